@@ -1,9 +1,15 @@
 package nuber.students;
 
+import java.util.Collection;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.ObjectName;
 import java.util.concurrent.ArrayBlockingQueue;
 /**
  * The core Dispatch class that instantiates and manages everything for Nuber
@@ -27,7 +33,7 @@ import java.util.concurrent.ArrayBlockingQueue;
 // Drivers are allocated on a first-in, first-out basis. Because passengers are allocated to a specific region,
 // different regions will be accessing a central collection of available drivers from Dispatch.
 
-public class NuberDispatch {
+public class NuberDispatch implements NuberDispatchMBean {
 
 	/**
 	 * The maximum number of idle drivers that can be awaiting a booking
@@ -35,6 +41,10 @@ public class NuberDispatch {
 	private final int MAX_DRIVERS = 999;
 	public final AtomicInteger ID = new AtomicInteger();
 
+	// distinguishes the JMX names of dispatches created in the same JVM
+	private static final AtomicInteger INSTANCES = new AtomicInteger();
+	private final int instanceID = INSTANCES.incrementAndGet();
+
 	private boolean logEvents = false;
 
 	private HashMap<String, Integer> regionInfo;
@@ -42,8 +52,16 @@ public class NuberDispatch {
 	private BlockingQueue<Driver> driverList;
 	private HashMap<String, NuberRegion> regionMap;
 
-	private int awaitingDriver;
-	private Future<BookingResult> futureResult;
+	private final AtomicInteger awaitingDriver = new AtomicInteger();
+
+	// JMX names of this dispatch and its regions, unregistered once every region has terminated
+	private final List<ObjectName> mbeanNames = new ArrayList<ObjectName>();
+
+	// driver wait statistics, updated by every booking thread that calls getDriver()
+	private final AtomicInteger blockedOnDriver = new AtomicInteger();
+	private final AtomicLong driverRequests = new AtomicLong();
+	private final AtomicLong driverWaitNanos = new AtomicLong();
+	private final AtomicLong maxDriverWaitNanos = new AtomicLong();
 
 	/**
 	 * Creates a new dispatch objects and instantiates the required regions and any other objects required.
@@ -54,10 +72,8 @@ public class NuberDispatch {
 	 */
 	public NuberDispatch(HashMap<String, Integer> regionInfo, boolean logEvents)
 	{
-		this.futureResult = null;
 		this.regionInfo = regionInfo;
 		this.logEvents = logEvents;
-		this.awaitingDriver = 0;
 		this.driverList = new ArrayBlockingQueue<Driver>(MAX_DRIVERS);
 		this.regionMap = new HashMap<String, NuberRegion>();
 
@@ -72,6 +88,11 @@ public class NuberDispatch {
 			}
 		);
 
+		registerMBean(this, "nuber.students:type=NuberDispatch,id=" + instanceID);
+		regionMap.forEach(
+			(name, region) -> registerMBean(region,
+					"nuber.students:type=NuberRegion,dispatch=" + instanceID + ",name=" + ObjectName.quote(name))
+		);
 	}
 
 	/**
@@ -102,15 +123,25 @@ public class NuberDispatch {
 	 */
 	public Driver getDriver()
 	{
+		long start = System.nanoTime();
+		blockedOnDriver.incrementAndGet();
 		try {
 			Driver valDriver = driverList.take();
-			awaitingDriver--;
+			awaitingDriver.decrementAndGet();
+
+			long waited = System.nanoTime() - start;
+			driverRequests.incrementAndGet();
+			driverWaitNanos.addAndGet(waited);
+			maxDriverWaitNanos.accumulateAndGet(waited, Math::max);
 			return valDriver;
 		}
 		catch(Exception e) {
 			System.out.println("[ERROR]Unable to getDriver():"+e.getMessage());
 			return null;
 		}
+		finally {
+			blockedOnDriver.decrementAndGet();
+		}
 	}
 
 	/**
@@ -140,12 +171,23 @@ public class NuberDispatch {
 	 */
 	public Future<BookingResult> bookPassenger(Passenger passenger, String region) {
 		NuberRegion allocatedRegion = regionMap.get(region);
-		futureResult = allocatedRegion.bookPassenger(passenger);
-		if(futureResult == null){
+		if(allocatedRegion == null){
+			System.out.println("[ERROR]Unable to bookPassenger(): unknown region " + region);
 			return null;
-		}else{
-			awaitingDriver++;
+		}
+
+		// count the booking before the region can start it, otherwise a booking that gets a
+		// driver straight away decrements the counter first and it briefly goes negative.
+		// Anything that stops the booking being accepted takes the count back off again.
+		awaitingDriver.incrementAndGet();
+		Future<BookingResult> futureResult = null;
+		try {
+			futureResult = allocatedRegion.bookPassenger(passenger);
 			return futureResult;
+		} finally {
+			if(futureResult == null){
+				awaitingDriver.decrementAndGet();
+			}
 		}
     }
 
@@ -156,9 +198,115 @@ public class NuberDispatch {
 	 *
 	 * @return Number of bookings awaiting driver, across ALL regions
 	 */
+	@Override
 	public int getBookingsAwaitingDriver()
 	{
-		return awaitingDriver;
+		return awaitingDriver.get();
+	}
+
+	@Override
+	public int getIdleDrivers()
+	{
+		return driverList.size();
+	}
+
+	@Override
+	public int getBookingsInFlight()
+	{
+		int total = 0;
+		for (NuberRegion region : regionMap.values()) {
+			total += region.getActiveBookings() + region.getQueuedBookings();
+		}
+		return total;
+	}
+
+	@Override
+	public int getBookingsQueued()
+	{
+		int total = 0;
+		for (NuberRegion region : regionMap.values()) {
+			total += region.getQueuedBookings();
+		}
+		return total;
+	}
+
+	@Override
+	public int getBookingsBlockedOnDriver()
+	{
+		return blockedOnDriver.get();
+	}
+
+	@Override
+	public long getDriverRequests()
+	{
+		return driverRequests.get();
+	}
+
+	@Override
+	public long getTotalDriverWaitMillis()
+	{
+		return TimeUnit.NANOSECONDS.toMillis(driverWaitNanos.get());
+	}
+
+	@Override
+	public double getAverageDriverWaitMillis()
+	{
+		long requests = driverRequests.get();
+		return requests == 0 ? 0 : driverWaitNanos.get() / 1e6 / requests;
+	}
+
+	@Override
+	public long getMaxDriverWaitMillis()
+	{
+		return TimeUnit.NANOSECONDS.toMillis(maxDriverWaitNanos.get());
+	}
+
+	@Override
+	public void resetStatistics()
+	{
+		driverRequests.set(0);
+		driverWaitNanos.set(0);
+		maxDriverWaitNanos.set(0);
+	}
+
+	/**
+	 * Called by a region once it has shut down and finished all of its bookings. When every
+	 * region has terminated, the dispatch and region MBeans are unregistered so the platform
+	 * MBean server doesn't keep this dispatch alive.
+	 */
+	synchronized void regionTerminated()
+	{
+		for (NuberRegion region : regionMap.values()) {
+			if (!region.isTerminated()) {
+				return;
+			}
+		}
+		mbeanNames.forEach(NuberMonitor::unregister);
+		mbeanNames.clear();
+	}
+
+	/**
+	 * Registers an MBean for this dispatch, remembering its name so it can be unregistered later
+	 *
+	 * @param mbean The object to register
+	 * @param name The JMX object name to register it under
+	 */
+	private synchronized void registerMBean(Object mbean, String name)
+	{
+		ObjectName objectName = NuberMonitor.register(mbean, name);
+		if (objectName != null) {
+			mbeanNames.add(objectName);
+		}
+	}
+
+	/**
+	 * Gets the regions managed by this dispatch, so they can be sampled by a monitor
+	 *
+	 * @return The dispatch's regions
+	 */
+	Collection<NuberRegion> getRegions()
+	{
+		return regionMap.values();
 	}
 
 	/**
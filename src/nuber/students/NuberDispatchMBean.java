@@ -0,0 +1,65 @@
+package nuber.students;
+
+/**
+ * JMX management interface for a running NuberDispatch.
+ *
+ * All values are live gauges or running totals read without blocking the dispatch,
+ * so they can be polled from a JMX console while bookings are in progress.
+ *
+ * @author james
+ *
+ */
+public interface NuberDispatchMBean {
+
+	/**
+	 * @return Number of bookings accepted but not yet given a driver, across ALL regions
+	 */
+	int getBookingsAwaitingDriver();
+
+	/**
+	 * @return Number of drivers currently sitting in the idle driver queue
+	 */
+	int getIdleDrivers();
+
+	/**
+	 * @return Number of bookings that have been accepted and not yet completed, across ALL regions
+	 */
+	int getBookingsInFlight();
+
+	/**
+	 * @return Number of bookings waiting for a free position in their region's executor
+	 */
+	int getBookingsQueued();
+
+	/**
+	 * @return Number of bookings currently inside getDriver(), either waiting for a driver to be
+	 * 			free or waiting to acquire the driver queue's lock
+	 */
+	int getBookingsBlockedOnDriver();
+
+	/**
+	 * @return Number of drivers handed out by getDriver() since the dispatch was created
+	 */
+	long getDriverRequests();
+
+	/**
+	 * @return Total time bookings have spent waiting in getDriver(), in milliseconds. This covers
+	 * 			both driver shortage and lock contention; see NuberRegionMBean to tell them apart.
+	 */
+	long getTotalDriverWaitMillis();
+
+	/**
+	 * @return Average time a booking spent waiting in getDriver(), in milliseconds
+	 */
+	double getAverageDriverWaitMillis();
+
+	/**
+	 * @return Longest single wait in getDriver(), in milliseconds
+	 */
+	long getMaxDriverWaitMillis();
+
+	/**
+	 * Resets the driver wait statistics, leaving the live gauges untouched
+	 */
+	void resetStatistics();
+}
@@ -0,0 +1,252 @@
+package nuber.students;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Periodically samples a NuberDispatch and its regions, keeping peaks and averages so
+ * a saturation report can be printed at any point while the dispatch is running.
+ *
+ * Each sample only reads the same gauges that are exposed over JMX, on a single daemon
+ * thread, so leaving a monitor running has very little effect on the bookings themselves.
+ * Samples taken while no bookings are in flight are counted but otherwise ignored, so the
+ * idle time before and after a run doesn't water down the diagnosis.
+ *
+ * The report is meant to answer where a slowdown is coming from:
+ * - bookings waiting in getDriver() with no idle drivers means there aren't enough drivers
+ * - bookings rejected by a region, or queued with its executor fully used, means the region limit is too low
+ * - workers parked on the driver queue's lock or blocked on a monitor means threads are contending on locks
+ *
+ * @author james
+ *
+ */
+public class NuberMonitor {
+
+	/**
+	 * Share of sampled busy worker states that must be lock waits before contention is reported
+	 */
+	private static final double CONTENTION_THRESHOLD = 0.1;
+
+	private final NuberDispatch dispatch;
+	private final long periodMillis;
+	private final ScheduledExecutorService sampler;
+
+	// whether thread contention monitoring was already on before start(), so stop() can put it back
+	private boolean contentionMonitoringWasEnabled;
+
+	private long samples;
+	private long busySamples;
+	private int peakAwaitingDriver;
+	private int peakBlockedOnDriver;
+	private int peakQueued;
+	private long samplesWithDriverShortage;
+	private final Map<String, RegionStats> regionStats = new LinkedHashMap<String, RegionStats>();
+
+	/**
+	 * Running figures for a single region, built up from each busy sample
+	 */
+	private static class RegionStats {
+		double totalUtilization;
+		double peakUtilization;
+		int peakQueued;
+		long samplesSaturated;
+		long activeWorkers;
+		long waitingForDriver;
+		long contendingDriverQueue;
+		long blockedOnMonitor;
+		long blockedMillis = -1;
+	}
+
+	/**
+	 * Creates a new monitor for the given dispatch. Sampling doesn't begin until start() is called.
+	 *
+	 * @param dispatch The dispatch to sample
+	 * @param periodMillis How often to take a sample, in milliseconds
+	 */
+	public NuberMonitor(NuberDispatch dispatch, long periodMillis)
+	{
+		this.dispatch = dispatch;
+		this.periodMillis = periodMillis;
+		this.sampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "NuberMonitor");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Turns on thread contention monitoring, so worker blocked/waited times are recorded,
+	 * and starts taking a sample every periodMillis milliseconds
+	 */
+	public synchronized void start()
+	{
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (threads.isThreadContentionMonitoringSupported()) {
+			contentionMonitoringWasEnabled = threads.isThreadContentionMonitoringEnabled();
+			threads.setThreadContentionMonitoringEnabled(true);
+		}
+		sampler.scheduleAtFixedRate(this::sample, 0, periodMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stops sampling, and turns thread contention monitoring back off if start() turned it on.
+	 * The figures collected so far are kept and can still be reported.
+	 */
+	public synchronized void stop()
+	{
+		sampler.shutdown();
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (threads.isThreadContentionMonitoringSupported() && !contentionMonitoringWasEnabled) {
+			threads.setThreadContentionMonitoringEnabled(false);
+		}
+	}
+
+	/**
+	 * Takes a single sample of the dispatch and each of its regions
+	 */
+	public synchronized void sample()
+	{
+		samples++;
+		if (dispatch.getBookingsInFlight() == 0) {
+			return;
+		}
+		busySamples++;
+
+		int blocked = dispatch.getBookingsBlockedOnDriver();
+		peakAwaitingDriver = Math.max(peakAwaitingDriver, dispatch.getBookingsAwaitingDriver());
+		peakBlockedOnDriver = Math.max(peakBlockedOnDriver, blocked);
+		peakQueued = Math.max(peakQueued, dispatch.getBookingsQueued());
+		if (blocked > 0 && dispatch.getIdleDrivers() == 0) {
+			samplesWithDriverShortage++;
+		}
+
+		for (NuberRegion region : dispatch.getRegions()) {
+			RegionStats stats = regionStats.computeIfAbsent(region.getRegionName(), name -> new RegionStats());
+
+			double utilization = region.getExecutorUtilization();
+			int queued = region.getQueuedBookings();
+			stats.totalUtilization += utilization;
+			stats.peakUtilization = Math.max(stats.peakUtilization, utilization);
+			stats.peakQueued = Math.max(stats.peakQueued, queued);
+			if (queued > 0 && utilization >= 1.0) {
+				stats.samplesSaturated++;
+			}
+
+			NuberRegion.WorkerSample workers = region.sampleWorkers();
+			stats.activeWorkers += region.getActiveBookings();
+			stats.waitingForDriver += workers.waitingForDriver;
+			stats.contendingDriverQueue += workers.contendingDriverQueue;
+			stats.blockedOnMonitor += workers.blockedOnMonitor;
+			stats.blockedMillis = workers.blockedTimeMillis;
+		}
+	}
+
+	/**
+	 * Builds a report of the current gauges, the peaks seen since sampling started, and
+	 * which resource the dispatch appears to be saturated on.
+	 *
+	 * @return The compiled report
+	 */
+	public synchronized String getSaturationReport()
+	{
+		StringBuilder report = new StringBuilder();
+		report.append("[NuberMonitor] Saturation report (" + busySamples + " of " + samples + " samples busy, every " + periodMillis + "ms)\n");
+		report.append(String.format("  Dispatch: inFlight=%d queued=%d awaitingDriver=%d blockedOnDriver=%d idleDrivers=%d%n",
+				dispatch.getBookingsInFlight(), dispatch.getBookingsQueued(), dispatch.getBookingsAwaitingDriver(),
+				dispatch.getBookingsBlockedOnDriver(), dispatch.getIdleDrivers()));
+		report.append(String.format("  Driver wait: requests=%d avg=%.1fms max=%dms total=%dms%n",
+				dispatch.getDriverRequests(), dispatch.getAverageDriverWaitMillis(),
+				dispatch.getMaxDriverWaitMillis(), dispatch.getTotalDriverWaitMillis()));
+		report.append(String.format("  Peaks: awaitingDriver=%d blockedOnDriver=%d queued=%d%n",
+				peakAwaitingDriver, peakBlockedOnDriver, peakQueued));
+
+		boolean regionBound = false;
+		boolean contended = false;
+		for (NuberRegion region : dispatch.getRegions()) {
+			RegionStats stats = regionStats.get(region.getRegionName());
+			if (stats == null) {
+				stats = new RegionStats();
+			}
+
+			// shares of the sampled busy worker states spent on each kind of wait
+			double active = Math.max(stats.activeWorkers, 1);
+			double lockShare = (stats.contendingDriverQueue + stats.blockedOnMonitor) / active;
+
+			report.append(String.format("  Region %s: active=%d/%d queued=%d completed=%d rejected=%d util(avg/peak)=%.0f%%/%.0f%% peakQueued=%d%n",
+					region.getRegionName(), region.getActiveBookings(), region.getMaxSimultaneousJobs(),
+					region.getQueuedBookings(), region.getCompletedBookings(), region.getRejectedBookings(),
+					busySamples == 0 ? 0 : 100 * stats.totalUtilization / busySamples, 100 * stats.peakUtilization,
+					stats.peakQueued));
+			report.append(String.format("    Workers: waitingForDriver=%.1f%% driverQueueLock=%.1f%% monitorBlocked=%.1f%% blocked=%s%n",
+					100 * stats.waitingForDriver / active, 100 * stats.contendingDriverQueue / active,
+					100 * stats.blockedOnMonitor / active,
+					stats.blockedMillis < 0 ? "n/a" : stats.blockedMillis + "ms"));
+
+			regionBound |= region.getRejectedBookings() > 0 || stats.samplesSaturated > busySamples / 2;
+			contended |= lockShare > CONTENTION_THRESHOLD;
+		}
+
+		report.append("  Diagnosis:");
+		boolean driverBound = busySamples > 0 && samplesWithDriverShortage > busySamples / 2;
+		if (driverBound) {
+			report.append(" driver-bound (bookings waiting with no idle drivers in " + samplesWithDriverShortage + " of " + busySamples + " busy samples)");
+		}
+		if (regionBound) {
+			report.append(" region-limited (bookings rejected or queued at maxSimultaneousJobs)");
+		}
+		if (contended) {
+			report.append(" lock contention (workers waiting on a lock in over " + (int) (100 * CONTENTION_THRESHOLD) + "% of samples)");
+		}
+		if (!driverBound && !regionBound && !contended) {
+			report.append(" not saturated");
+		}
+		return report.toString();
+	}
+
+	/**
+	 * Registers an MBean with the platform MBean server. Failures are logged rather than
+	 * thrown, as monitoring should never stop dispatch from running.
+	 *
+	 * @param mbean The object to register
+	 * @param name The JMX object name to register it under
+	 * @return The registered name, or null if nothing was registered
+	 */
+	static ObjectName register(Object mbean, String name)
+	{
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName objectName = new ObjectName(name);
+			if (!server.isRegistered(objectName)) {
+				server.registerMBean(mbean, objectName);
+				return objectName;
+			}
+		} catch(Exception e) {
+			System.out.println("[ERROR]Unable to register MBean " + name + ":" + e.getMessage());
+		}
+		return null;
+	}
+
+	/**
+	 * Unregisters an MBean registered by register(). Failures are logged rather than thrown.
+	 *
+	 * @param objectName The JMX object name to unregister
+	 */
+	static void unregister(ObjectName objectName)
+	{
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if (server.isRegistered(objectName)) {
+				server.unregisterMBean(objectName);
+			}
+		} catch(Exception e) {
+			System.out.println("[ERROR]Unable to unregister MBean " + objectName + ":" + e.getMessage());
+		}
+	}
+}
@@ -1,8 +1,18 @@
 package nuber.students;
 
+import java.lang.management.LockInfo;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Future;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 /**
  * A single Nuber region that operates independently of other regions, other than getting 
  * drivers from bookings from the central dispatch.
@@ -30,15 +40,45 @@ import java.util.concurrent.Executors;
 
 // When a region is asked to book a passenger by dispatch, it creates a new Booking object, and adds the booking ready for processing.
 
-public class NuberRegion {
+public class NuberRegion implements NuberRegionMBean {
+
+	/**
+	 * How many stack frames to capture per worker, enough to see whether a parked
+	 * worker is inside the dispatch's driver queue
+	 */
+	private static final int STACK_DEPTH = 16;
 
 	private final NuberDispatch dispatch;
 	public String regionName;
 	public int maxSimultaneousJobs;
 	private int currentSimultaneousJobs;
 
-	private final ExecutorService executor;
-	private boolean shutDown = false;
+	private final ThreadPoolExecutor executor;
+	private volatile boolean shutDown = false;
+	private volatile boolean terminated = false;
+
+	// bookings turned away because maxSimultaneousJobs had been reached
+	private final AtomicLong rejectedBookings = new AtomicLong();
+
+	// ids of this region's worker threads, and the last statistics seen for each of them,
+	// so the blocked/waited totals don't fall when a worker exits
+	private final Set<Long> workerThreadIds = ConcurrentHashMap.newKeySet();
+	private final Map<Long, ThreadInfo> lastWorkerInfo = new ConcurrentHashMap<Long, ThreadInfo>();
+	private final AtomicInteger workerCount = new AtomicInteger();
+
+	/**
+	 * A snapshot of what the region's worker threads were doing when it was taken, along
+	 * with their running blocked/waited totals
+	 */
+	static class WorkerSample {
+		int waitingForDriver;
+		int contendingDriverQueue;
+		int blockedOnMonitor;
+		long blockedCount;
+		long blockedTimeMillis;
+		long waitedTimeMillis;
+	}
+
 	/**
 	 * Creates a new Nuber region
 	 * 
@@ -48,7 +88,23 @@ public class NuberRegion {
 	 */
 	public NuberRegion(NuberDispatch dispatch, String regionName, int maxSimultaneousJobs)
 	{
-		this.executor = Executors.newFixedThreadPool(maxSimultaneousJobs);
+		// same as Executors.newFixedThreadPool(), but keeps the ThreadPoolExecutor type so
+		// queue length and active count can be reported, tags each worker thread, and lets
+		// dispatch know once the last booking has finished after a shutdown
+		this.executor = new ThreadPoolExecutor(maxSimultaneousJobs, maxSimultaneousJobs,
+				0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+				runnable -> {
+					Thread worker = new Thread(runnable, "NuberRegion-" + regionName + "-" + workerCount.incrementAndGet());
+					workerThreadIds.add(worker.getId());
+					return worker;
+				}) {
+			@Override
+			protected void terminated() {
+				super.terminated();
+				NuberRegion.this.terminated = true;
+				dispatch.regionTerminated();
+			}
+		};
 		this.dispatch = dispatch;
 		this.regionName = regionName;
 		this.maxSimultaneousJobs = maxSimultaneousJobs;
@@ -72,6 +128,7 @@ public class NuberRegion {
 			System.out.println("[NuberRegion]" + regionName+": Booking Rejected - Shutting Down.");
 			return null;
 		}else if (currentSimultaneousJobs >= maxSimultaneousJobs) {
+			rejectedBookings.incrementAndGet();
 			System.out.println("[NuberRegion]" + regionName+": Booking Rejected - maxSimultaneousJobs reached.");
 			return null;
 		}else {
@@ -79,7 +136,13 @@ public class NuberRegion {
 			currentSimultaneousJobs++;
 			Booking booking = new Booking(dispatch, waitingPassenger);
 
-			return executor.submit(booking);
+			try {
+				return executor.submit(booking);
+			} catch(RejectedExecutionException e) {
+				// shutdown() was called between the shutDown check above and the submit
+				System.out.println("[NuberRegion]" + regionName+": Booking Rejected - Shutting Down.");
+				return null;
+			}
 		}
 	}
 	
@@ -92,5 +155,171 @@ public class NuberRegion {
 		executor.shutdown();
 		System.out.println("[NuberRegion]" + regionName+": Starting to Shut down...");
 	}
-		
+
+	/**
+	 * @return Whether the region has shut down and finished all of its bookings
+	 */
+	boolean isTerminated()
+	{
+		return terminated;
+	}
+
+	@Override
+	public String getRegionName()
+	{
+		return regionName;
+	}
+
+	@Override
+	public int getMaxSimultaneousJobs()
+	{
+		return maxSimultaneousJobs;
+	}
+
+	@Override
+	public int getActiveBookings()
+	{
+		return executor.getActiveCount();
+	}
+
+	@Override
+	public int getQueuedBookings()
+	{
+		return executor.getQueue().size();
+	}
+
+	@Override
+	public long getCompletedBookings()
+	{
+		return executor.getCompletedTaskCount();
+	}
+
+	@Override
+	public long getRejectedBookings()
+	{
+		return rejectedBookings.get();
+	}
+
+	@Override
+	public double getExecutorUtilization()
+	{
+		return (double) executor.getActiveCount() / executor.getMaximumPoolSize();
+	}
+
+	@Override
+	public int getWorkersWaitingForDriver()
+	{
+		return sampleWorkers().waitingForDriver;
+	}
+
+	@Override
+	public int getWorkersContendingDriverQueue()
+	{
+		return sampleWorkers().contendingDriverQueue;
+	}
+
+	@Override
+	public int getWorkersBlockedOnMonitor()
+	{
+		return sampleWorkers().blockedOnMonitor;
+	}
+
+	@Override
+	public long getWorkerBlockedCount()
+	{
+		return sampleWorkers().blockedCount;
+	}
+
+	@Override
+	public long getWorkerBlockedTimeMillis()
+	{
+		return sampleWorkers().blockedTimeMillis;
+	}
+
+	@Override
+	public long getWorkerWaitedTimeMillis()
+	{
+		return sampleWorkers().waitedTimeMillis;
+	}
+
+	@Override
+	public boolean isShutDown()
+	{
+		return shutDown;
+	}
+
+	/**
+	 * Takes a snapshot of the JVM's thread statistics for this region's worker threads.
+	 *
+	 * Workers that have exited keep the last statistics seen for them, so the totals only
+	 * ever go up. Blocked and waited times are -1 unless thread contention monitoring is on.
+	 *
+	 * @return The sampled worker states and totals
+	 */
+	synchronized WorkerSample sampleWorkers()
+	{
+		long[] ids = workerThreadIds.stream().mapToLong(Long::longValue).toArray();
+		ThreadInfo[] infos = ManagementFactory.getThreadMXBean().getThreadInfo(ids, STACK_DEPTH);
+
+		WorkerSample sample = new WorkerSample();
+		for (int i = 0; i < ids.length; i++) {
+			if (infos[i] == null) {
+				// a worker we've seen before has exited, so stop asking for it. One we haven't
+				// seen yet may just not have started, so keep it.
+				if (lastWorkerInfo.containsKey(ids[i])) {
+					workerThreadIds.remove(ids[i]);
+				}
+				continue;
+			}
+			lastWorkerInfo.put(ids[i], infos[i]);
+			classifyWorker(infos[i], sample);
+		}
+
+		boolean timed = ManagementFactory.getThreadMXBean().isThreadContentionMonitoringEnabled();
+		for (ThreadInfo info : lastWorkerInfo.values()) {
+			sample.blockedCount += info.getBlockedCount();
+			sample.blockedTimeMillis += Math.max(info.getBlockedTime(), 0);
+			sample.waitedTimeMillis += Math.max(info.getWaitedTime(), 0);
+		}
+		if (!timed) {
+			sample.blockedTimeMillis = -1;
+			sample.waitedTimeMillis = -1;
+		}
+		return sample;
+	}
+
+	/**
+	 * Works out what a worker was doing when it was sampled.
+	 *
+	 * A worker parked inside an ArrayBlockingQueue is in the dispatch's driver queue, as that's
+	 * the only one on the booking path. If it's parked on the queue's notEmpty condition then
+	 * no driver is free. If it's parked on the queue's ReentrantLock then another thread holds
+	 * the lock, which is contention. A BLOCKED worker is waiting on a synchronized monitor.
+	 *
+	 * @param info The worker's thread info
+	 * @param sample The sample to add the worker to
+	 */
+	private static void classifyWorker(ThreadInfo info, WorkerSample sample)
+	{
+		if (info.getThreadState() == Thread.State.BLOCKED) {
+			sample.blockedOnMonitor++;
+			return;
+		}
+
+		LockInfo lock = info.getLockInfo();
+		if (info.getThreadState() != Thread.State.WAITING || lock == null) {
+			return;
+		}
+		for (StackTraceElement frame : info.getStackTrace()) {
+			if (frame.getClassName().equals("java.util.concurrent.ArrayBlockingQueue")) {
+				if (lock.getClassName().endsWith("ConditionObject")) {
+					sample.waitingForDriver++;
+				} else {
+					sample.contendingDriverQueue++;
+				}
+				return;
+			}
+		}
+	}
+
 }
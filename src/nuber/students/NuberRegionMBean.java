@@ -0,0 +1,88 @@
+package nuber.students;
+
+/**
+ * JMX management interface for a single NuberRegion.
+ *
+ * Executor figures come straight from the region's thread pool. Worker figures are sampled
+ * from the JVM's thread statistics for the region's worker threads each time they're read.
+ * Blocked and waited times are -1 unless thread contention monitoring has been turned on,
+ * which NuberMonitor does while it's running.
+ *
+ * @author james
+ *
+ */
+public interface NuberRegionMBean {
+
+	/**
+	 * @return The region's name
+	 */
+	String getRegionName();
+
+	/**
+	 * @return The maximum number of simultaneous bookings the region is allowed to process
+	 */
+	int getMaxSimultaneousJobs();
+
+	/**
+	 * @return Number of bookings currently being processed by a worker thread
+	 */
+	int getActiveBookings();
+
+	/**
+	 * @return Number of accepted bookings waiting for a free worker thread
+	 */
+	int getQueuedBookings();
+
+	/**
+	 * @return Number of bookings the region has finished processing
+	 */
+	long getCompletedBookings();
+
+	/**
+	 * @return Number of bookings rejected because maxSimultaneousJobs had been reached
+	 */
+	long getRejectedBookings();
+
+	/**
+	 * @return Fraction (0.0 - 1.0) of the region's worker threads that are busy
+	 */
+	double getExecutorUtilization();
+
+	/**
+	 * @return Number of workers parked on the driver queue's notEmpty condition, i.e. with no driver free
+	 */
+	int getWorkersWaitingForDriver();
+
+	/**
+	 * @return Number of workers parked trying to acquire the driver queue's lock
+	 */
+	int getWorkersContendingDriverQueue();
+
+	/**
+	 * @return Number of workers blocked entering a synchronized block, e.g. System.out.println()
+	 */
+	int getWorkersBlockedOnMonitor();
+
+	/**
+	 * @return Total number of times the region's worker threads have blocked entering a synchronized block
+	 */
+	long getWorkerBlockedCount();
+
+	/**
+	 * @return Total time the region's worker threads have spent blocked entering a synchronized block,
+	 * 			in milliseconds. This does not include waiting on the driver queue's lock.
+	 */
+	long getWorkerBlockedTimeMillis();
+
+	/**
+	 * @return Total time the region's worker threads have spent waiting or parked, in milliseconds.
+	 * 			This includes drivers sleeping and idle workers waiting for a booking, so it is not a
+	 * 			measure of contention.
+	 */
+	long getWorkerWaitedTimeMillis();
+
+	/**
+	 * @return Whether the region has been told to shutdown
+	 */
+	boolean isShutDown();
+}
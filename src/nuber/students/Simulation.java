@@ -37,6 +37,10 @@ public class Simulation {
 		//create a new dispatch object
 		NuberDispatch dispatch = new NuberDispatch(regions, logEvents);
 
+		//sample dispatch every 100ms so we can report what it was saturated on
+		NuberMonitor monitor = new NuberMonitor(dispatch, 100);
+		monitor.start();
+
 		// create drivers that are available for jobs
 		for (int i = 0; i < maxDrivers; i++) {
 			Driver d = new Driver("D-" + Person.getRandomName(), maxSleep);
@@ -95,6 +99,10 @@ public class Simulation {
 			}
 		}
 
+		//stop sampling and print out where bookings spent their time
+		monitor.stop();
+		System.out.println(monitor.getSaturationReport());
+
 		//print out the final information for the simulation run
 		long totalTime = new Date().getTime() - start;
 		System.out.println("Simulation complete in "+totalTime+"ms");